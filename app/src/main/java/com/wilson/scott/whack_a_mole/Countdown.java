@@ -0,0 +1,114 @@
+package com.wilson.scott.whack_a_mole;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * A once a second countdown for the game timer
+ * A single Timer thread is kept for the life of the countdown, starting, stopping and pausing
+ * only swap the task that is scheduled on it
+ *
+ * @author Scott Wilson
+ */
+
+public class Countdown {
+
+    private final long TICK = 1000;
+
+    private final Timer timer = new Timer("countdown", true);
+    private final Runnable onTick;
+    private TimerTask task;
+    private volatile long lastTickAt;
+    private long pausedRemaining = -1;
+
+    /**
+     * Constructor for Countdown class
+     *
+     * @param onTick ran on the timer thread once every second while the countdown is running
+     */
+    public Countdown(Runnable onTick) {
+        this.onTick = onTick;
+    }
+
+    /**
+     * Start counting, with the first tick right away
+     */
+    public synchronized void start() {
+        stop();
+        schedule(0);
+    }
+
+    /**
+     * Stop counting, a paused countdown is forgotten as well
+     */
+    public synchronized void stop() {
+        cancelTask();
+        pausedRemaining = -1;
+    }
+
+    /**
+     * Stop counting but remember how much of the current second was left
+     *
+     * @return true if the countdown was running, false otherwise
+     */
+    public synchronized boolean pause() {
+        if (task == null) {
+            return false;
+        }
+        long elapsed = (System.nanoTime() - lastTickAt) / 1000000;
+        pausedRemaining = Math.max(0, TICK - elapsed);
+        cancelTask();
+        return true;
+    }
+
+    /**
+     * Continue a paused countdown, the next tick comes after what was left of its second
+     *
+     * @return true if the countdown was paused, false otherwise
+     */
+    public synchronized boolean resume() {
+        if (pausedRemaining < 0) {
+            return false;
+        }
+        schedule(pausedRemaining);
+        pausedRemaining = -1;
+        return true;
+    }
+
+    /**
+     * Stop counting for good and end the timer thread, the countdown cannot be used afterwards
+     */
+    public synchronized void shutdown() {
+        stop();
+        timer.cancel();
+    }
+
+    /**
+     * Schedule a new tick task on the timer
+     *
+     * @param delay the number of milliseconds before the first tick
+     */
+    private void schedule(long delay) {
+        //Treat the time before the first tick as the end of a second, so pausing early works
+        lastTickAt = System.nanoTime() + (delay - TICK) * 1000000;
+        task = new TimerTask() {
+            @Override
+            public void run() {
+                lastTickAt = System.nanoTime();
+                onTick.run();
+            }
+        };
+        timer.scheduleAtFixedRate(task, delay, TICK);
+    }
+
+    /**
+     * Cancel the current tick task and clear it out of the timer's queue
+     */
+    private void cancelTask() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+            timer.purge();
+        }
+    }
+}
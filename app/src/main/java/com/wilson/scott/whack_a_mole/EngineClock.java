@@ -0,0 +1,164 @@
+package com.wilson.scott.whack_a_mole;
+
+import android.os.Handler;
+import android.os.Message;
+
+/**
+ * The clock that every mole on a board sleeps on
+ * Engine time stops while the clock is suspended, so every deadline keeps its remaining time,
+ * and sleeping moles are parked without a timeout so nothing wakes up until it is resumed
+ *
+ * @author Scott Wilson
+ */
+
+public class EngineClock {
+
+    private boolean suspended = false;
+    private boolean stopped = false;
+    private long suspendedAt;
+    private long suspendedFor;
+
+    // Counters used to measure how much work the engine does, such as while it is suspended
+    private long wakeups;
+    private long messagesSent;
+
+    /**
+     * A monotonic millisecond clock that engine time is based on
+     * Unlike the wall clock it never jumps when the time is set by the user or by the network,
+     * so timestamps passed to the engine (such as taps) must come from here
+     *
+     * @return the number of milliseconds since an arbitrary fixed point
+     */
+    public static long uptimeMillis() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /**
+     * The current engine time, which does not advance while suspended
+     *
+     * @return uptimeMillis(), minus all time spent suspended
+     */
+    public synchronized long now() {
+        if (suspended) {
+            return suspendedAt - suspendedFor;
+        }
+        return uptimeMillis() - suspendedFor;
+    }
+
+    /**
+     * Convert a timestamp taken while running into engine time
+     *
+     * @param timeStamp a timestamp from uptimeMillis()
+     * @return the same moment in engine time
+     */
+    public synchronized long toEngineTime(long timeStamp) {
+        return timeStamp - suspendedFor;
+    }
+
+    /**
+     * Freeze engine time and park every sleeping mole until resume() is called
+     */
+    public synchronized void suspend() {
+        if (!suspended) {
+            suspended = true;
+            suspendedAt = uptimeMillis();
+            //Wake sleepers once so they trade their timed wait for an untimed one
+            notifyAll();
+        }
+    }
+
+    /**
+     * Start engine time again, every sleeping mole continues with the time it had remaining
+     */
+    public synchronized void resume() {
+        if (suspended) {
+            suspended = false;
+            suspendedFor += uptimeMillis() - suspendedAt;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stop the clock for good when the game ends, even while suspended
+     * Every sleep returns and every message is dropped from here on, so moles can finish
+     */
+    public synchronized void stop() {
+        stopped = true;
+        notifyAll();
+    }
+
+    /**
+     * Is the clock currently suspended
+     *
+     * @return true if suspended, false otherwise
+     */
+    public synchronized boolean isSuspended() {
+        return suspended;
+    }
+
+    /**
+     * Sleep for an amount of engine time, time spent suspended does not count towards it
+     * Returns straight away once the clock is stopped
+     *
+     * @param millis the number of milliseconds to sleep for
+     * @throws InterruptedException if the thread is interrupted, such as by a hit
+     */
+    public synchronized void sleep(long millis) throws InterruptedException {
+        long deadline = now() + millis;
+        while (!stopped) {
+            if (suspended) {
+                wait();
+            } else {
+                long remaining = deadline - now();
+                if (remaining <= 0) {
+                    return;
+                }
+                wait(remaining);
+            }
+            wakeups++;
+        }
+    }
+
+    /**
+     * Send a message to the UI thread, holding it back while the clock is suspended
+     * Messages are dropped once the clock is stopped
+     *
+     * @param uiHandler the handler for the UI thread
+     * @param m         the message to send
+     */
+    public synchronized void send(Handler uiHandler, Message m) {
+        while (suspended && !stopped) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                //The game is ending, drop the message
+                Thread.currentThread().interrupt();
+                return;
+            }
+            wakeups++;
+        }
+        if (stopped) {
+            return;
+        }
+        messagesSent++;
+        uiHandler.sendMessage(m);
+    }
+
+    /**
+     * The number of times a mole has woken up on this clock
+     *
+     * @return the number of wakeups
+     */
+    public synchronized long getWakeups() {
+        return wakeups;
+    }
+
+    /**
+     * The number of messages sent to the UI thread through this clock
+     *
+     * @return the number of messages
+     */
+    public synchronized long getMessagesSent() {
+        return messagesSent;
+    }
+}
@@ -0,0 +1,377 @@
+package com.wilson.scott.whack_a_mole;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * Low overhead span markers for following a tap through the game engine and back to the screen
+ * Every thread records into its own preallocated ring buffer, so marking a span never locks or
+ * allocates and a full buffer keeps the newest events, and a whole round can be exported as
+ * Chrome trace event JSON for a trace viewer
+ * The last stage is the pre-draw pass of the frame that shows the change, the time the
+ * compositor then takes to put that frame on the display is not traced
+ *
+ * @author Scott Wilson
+ */
+
+public class LatencyTracer {
+
+    // Stages of a tap, from the click listener to the grid drawing the change
+    public static final int TAP = 0;
+    public static final int HIT = 1;
+    public static final int WAKE = 2;
+    public static final int POST = 3;
+    public static final int HANDLE = 4;
+    public static final int REBIND = 5;
+    public static final int GET_VIEW = 6;
+    public static final int FRAME = 7;
+
+    private static final String[] STAGE_NAMES = new String[] {
+            "onItemClick", "MoleBoard.hit", "Mole.wake", "sendMessage", "handleMessage",
+            "notifyDataSetChanged", "getView", "onPreDraw"};
+
+    // Chrome trace event phases
+    private static final char BEGIN = 'B';
+    private static final char END = 'E';
+    private static final char INSTANT = 'i';
+
+    // Number of events each thread holds before the oldest are overwritten
+    static final int CAPACITY = 4096;
+
+    // Events the UI thread records in a whole round on the largest board: up to 68 pop ups send
+    // three messages each, every message handles, rebinds and redraws 25 views (55 events),
+    // plus a few hundred taps and frames
+    public static final int UI_CAPACITY = 16384;
+
+    private static volatile boolean enabled = false;
+
+    // Every buffer that has been created, so they can all be exported together
+    private static final ArrayList<Buffer> buffers = new ArrayList<>();
+
+    // Buffers of finished threads, handed to new threads instead of allocating more
+    private static final ArrayList<Buffer> spare = new ArrayList<>();
+
+    private static final ThreadLocal<Buffer> local = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            Thread thread = Thread.currentThread();
+            synchronized (buffers) {
+                Buffer buffer = spare.isEmpty()
+                        ? new Buffer(CAPACITY) : spare.remove(spare.size() - 1);
+                buffer.attach(thread);
+                buffers.add(buffer);
+                return buffer;
+            }
+        }
+    };
+
+    /**
+     * A single thread's preallocated event storage, used as a ring
+     */
+    private static class Buffer {
+        Thread thread;
+        long tid;
+        String threadName;
+        final int capacity;
+        final long[] times;
+        final int[] stages;
+        final int[] args;
+        final char[] phases;
+
+        // Total events ever recorded, the newest capacity of them are still in the ring
+        volatile long written;
+
+        // Events that were overwritten before a snapshot copied this buffer, only set on copies
+        long overwritten;
+
+        Buffer(int capacity) {
+            this.capacity = capacity;
+            times = new long[capacity];
+            stages = new int[capacity];
+            args = new int[capacity];
+            phases = new char[capacity];
+        }
+
+        void attach(Thread thread) {
+            this.thread = thread;
+            tid = thread.getId();
+            threadName = thread.getName();
+            written = 0;
+        }
+
+        void record(char phase, int stage, int arg) {
+            long n = written;
+            int i = (int) (n % capacity);
+            times[i] = System.nanoTime();
+            stages[i] = stage;
+            args[i] = arg;
+            phases[i] = phase;
+            written = n + 1;
+        }
+    }
+
+    /**
+     * A copy of every buffer, taken so the events can be written out on another thread
+     * Each copy holds only the events that were in use, oldest first
+     */
+    public static class Snapshot {
+        private final ArrayList<Buffer> copies = new ArrayList<>();
+
+        /**
+         * Write every event in this snapshot as Chrome trace event JSON
+         * End events whose begin was overwritten in the ring are left out so that spans pair up
+         *
+         * @param out where the JSON is written to
+         * @throws IOException if the writer fails
+         */
+        public void writeTo(Writer out) throws IOException {
+            StringBuilder sb = new StringBuilder(128);
+            out.write("{\"traceEvents\":[");
+            boolean first = true;
+            for (Buffer buffer : copies) {
+                //Name the thread so the viewer shows which worker each row is
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + buffer.tid
+                        + ",\"args\":{\"name\":\"" + escape(buffer.threadName) + "\"}}");
+
+                int depth = 0;
+                long lastTime = 0;
+                for (int i = 0; i < buffer.capacity; i++) {
+                    char phase = buffer.phases[i];
+                    if (phase == BEGIN) {
+                        depth++;
+                    } else if (phase == END) {
+                        if (depth == 0) {
+                            continue;
+                        }
+                        depth--;
+                    }
+                    lastTime = buffer.times[i];
+
+                    sb.setLength(0);
+                    sb.append(",{\"name\":\"").append(STAGE_NAMES[buffer.stages[i]])
+                            .append("\",\"ph\":\"").append(phase).append("\",\"ts\":");
+                    appendMicros(sb, lastTime);
+                    sb.append(",\"pid\":1,\"tid\":").append(buffer.tid);
+                    if (phase == INSTANT) {
+                        sb.append(",\"s\":\"t\"");
+                    }
+                    sb.append(",\"args\":{\"position\":").append(buffer.args[i]).append("}}");
+                    out.write(sb.toString());
+                }
+
+                //Report overwritten events at the end of the thread's timeline
+                if (buffer.overwritten > 0) {
+                    sb.setLength(0);
+                    sb.append(",{\"name\":\"overwritten\",\"ph\":\"C\",\"ts\":");
+                    appendMicros(sb, lastTime);
+                    sb.append(",\"pid\":1,\"tid\":").append(buffer.tid)
+                            .append(",\"args\":{\"events\":").append(buffer.overwritten)
+                            .append("}}");
+                    out.write(sb.toString());
+                }
+            }
+            out.write("]}");
+            out.flush();
+        }
+    }
+
+    /**
+     * Turn tracing on or off, nothing is recorded while tracing is off
+     *
+     * @param on true to record spans, false otherwise
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Is tracing currently turned on
+     *
+     * @return true if spans are being recorded, false otherwise
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Give the calling thread a buffer of its own size, such as the UI thread, which records
+     * far more events in a round than any mole
+     *
+     * @param capacity the number of events the calling thread holds before overwriting
+     */
+    public static void reserve(int capacity) {
+        Thread thread = Thread.currentThread();
+        synchronized (buffers) {
+            for (int i = buffers.size() - 1; i >= 0; i--) {
+                if (buffers.get(i).thread == thread) {
+                    buffers.remove(i);
+                }
+            }
+            Buffer buffer = new Buffer(capacity);
+            buffer.attach(thread);
+            buffers.add(buffer);
+            local.set(buffer);
+        }
+    }
+
+    /**
+     * Mark the start of a stage on the calling thread
+     *
+     * @param stage the stage that is starting
+     * @param arg   the grid position the stage is working on, or -1 if there is none
+     */
+    public static void begin(int stage, int arg) {
+        if (enabled) {
+            local.get().record(BEGIN, stage, arg);
+        }
+    }
+
+    /**
+     * Mark the end of a stage on the calling thread
+     *
+     * @param stage the stage that is ending
+     * @param arg   the grid position the stage is working on, or -1 if there is none
+     */
+    public static void end(int stage, int arg) {
+        if (enabled) {
+            local.get().record(END, stage, arg);
+        }
+    }
+
+    /**
+     * Mark a single moment on the calling thread
+     *
+     * @param stage the stage that happened
+     * @param arg   the grid position the stage is working on, or -1 if there is none
+     */
+    public static void instant(int stage, int arg) {
+        if (enabled) {
+            local.get().record(INSTANT, stage, arg);
+        }
+    }
+
+    /**
+     * Throw away every recorded event so that a new round starts with an empty timeline
+     * Buffers of threads that have finished (such as the last round's moles) are kept aside
+     * for the next round's threads, unless they were reserved with a size of their own
+     */
+    public static void reset() {
+        synchronized (buffers) {
+            for (int i = buffers.size() - 1; i >= 0; i--) {
+                Buffer buffer = buffers.get(i);
+                if (buffer.thread.isAlive()) {
+                    buffer.written = 0;
+                } else {
+                    buffers.remove(i);
+                    buffer.thread = null;
+                    if (buffer.capacity == CAPACITY) {
+                        spare.add(buffer);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy every buffer so the events can be written out without holding up recording threads
+     * Only the events in use are copied, so this is cheap enough for the UI thread, the JSON
+     * itself should be written on a background thread
+     *
+     * @return the copied events
+     */
+    public static Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        synchronized (buffers) {
+            for (Buffer buffer : buffers) {
+                long written = buffer.written;
+                int used = (int) Math.min(written, buffer.capacity);
+                int oldest = (int) ((written - used) % buffer.capacity);
+                Buffer copy = new Buffer(used);
+                copy.tid = buffer.tid;
+                copy.threadName = buffer.threadName;
+                copy.written = used;
+                copy.overwritten = written - used;
+                copyRing(buffer.times, copy.times, oldest, used, buffer.capacity);
+                copyRing(buffer.stages, copy.stages, oldest, used, buffer.capacity);
+                copyRing(buffer.args, copy.args, oldest, used, buffer.capacity);
+                copyRing(buffer.phases, copy.phases, oldest, used, buffer.capacity);
+                snapshot.copies.add(copy);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Write every recorded event as Chrome trace event JSON
+     *
+     * @param out where the JSON is written to
+     * @throws IOException if the writer fails
+     */
+    public static void writeTo(Writer out) throws IOException {
+        snapshot().writeTo(out);
+    }
+
+    /**
+     * Copy events out of a ring into a plain array, oldest first
+     *
+     * @param ring     the ring array to copy from
+     * @param out      the array to copy to
+     * @param oldest   the index of the oldest event in the ring
+     * @param used     the number of events to copy
+     * @param capacity the size of the ring
+     */
+    private static void copyRing(Object ring, Object out, int oldest, int used, int capacity) {
+        int head = Math.min(used, capacity - oldest);
+        System.arraycopy(ring, oldest, out, 0, head);
+        System.arraycopy(ring, 0, out, head, used - head);
+    }
+
+    /**
+     * Append a nanosecond timestamp as the microseconds that trace events use
+     *
+     * @param sb    where the timestamp is appended
+     * @param nanos the timestamp in nanoseconds
+     */
+    private static void appendMicros(StringBuilder sb, long nanos) {
+        sb.append(nanos / 1000).append('.');
+        long fraction = nanos % 1000;
+        if (fraction < 100) {
+            sb.append('0');
+        }
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+
+    /**
+     * Escape a string so that it is safe to place inside JSON quotes
+     *
+     * @param s the string to escape
+     * @return the escaped string
+     */
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                String hex = Integer.toHexString(c);
+                sb.append("\\u");
+                for (int pad = hex.length(); pad < 4; pad++) {
+                    sb.append('0');
+                }
+                sb.append(hex);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -15,17 +15,22 @@ import android.os.Message;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.GridView;
 import android.widget.Spinner;
 import android.widget.TextView;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -34,8 +39,9 @@ public class MainActivity extends AppCompatActivity {
     private final int MOLEHOLE_ACTIVE = 101;
     private final int MOLEHOLE_INACTIVE = 102;
     private final int INITIAL_TIMER = 30;
+    private final String TRACE_FILE = "trace.json";
 
-    private Timer t;
+    private Countdown countdown;
     private GridView grid;
     private TextView scoreText;
     private TextView timerText;
@@ -43,6 +49,8 @@ public class MainActivity extends AppCompatActivity {
     private int score;
     private MoleBoard board;
     private MoleAdapter adapter;
+    // Seed of the current round's pop up schedule, every device plays the same rounds in order
+    private long round = 1;
     int width;
     int moleLimit = 3;
     int boardSize = 3;
@@ -60,6 +68,12 @@ public class MainActivity extends AppCompatActivity {
         //Load layout based off XML properties
         setContentView(R.layout.activity_main);
 
+        //Only record latency spans in debug builds, with room on the UI thread for a whole round
+        LatencyTracer.setEnabled(BuildConfig.DEBUG);
+        if (BuildConfig.DEBUG) {
+            LatencyTracer.reserve(LatencyTracer.UI_CAPACITY);
+        }
+
         //Retrieves information about the physical size of the users device
         DisplayMetrics dm = new DisplayMetrics();
         getWindowManager().getDefaultDisplay().getMetrics(dm);
@@ -70,6 +84,15 @@ public class MainActivity extends AppCompatActivity {
         //Initialize grid based off parameters declared in xml
         grid = (GridView) findViewById(R.id.gameBoard);
         grid.setStretchMode(GridView.NO_STRETCH);
+
+        //Mark every frame the grid draws so a trace shows when a change reached the screen
+        grid.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                LatencyTracer.instant(LatencyTracer.FRAME, -1);
+                return true;
+            }
+        });
         scoreText = (TextView) findViewById(R.id.score);
         timerText = (TextView) findViewById(R.id.timerText);
 
@@ -177,7 +200,9 @@ public class MainActivity extends AppCompatActivity {
                  * A timestamp is used here as a means to ensure that no matter how the cpu context
                  * switches, it will still have a way to verify if a click was made in time or not
                  */
-                board.hit(position, System.currentTimeMillis());
+                LatencyTracer.begin(LatencyTracer.TAP, position);
+                board.hit(position, EngineClock.uptimeMillis());
+                LatencyTracer.end(LatencyTracer.TAP, position);
             }
         });
 
@@ -190,6 +215,7 @@ public class MainActivity extends AppCompatActivity {
      */
     Handler uiHandler = new Handler() {
         public void handleMessage(Message msg) {
+            LatencyTracer.begin(LatencyTracer.HANDLE, msg.arg1);
             if ( msg.what == MOLEHOLE_ACTIVE  || msg.what == MOLEHOLE_INACTIVE) {
                 adapter.updateView();
             }
@@ -199,6 +225,7 @@ public class MainActivity extends AppCompatActivity {
                 scoreText.setText("Score: " + score);
                 adapter.updateView();
             }
+            LatencyTracer.end(LatencyTracer.HANDLE, msg.arg1);
         }
     };
 
@@ -207,33 +234,73 @@ public class MainActivity extends AppCompatActivity {
      * Updates timer text every second.
      **/
     public void beginTimer() {
-        t = new Timer();
-        t.scheduleAtFixedRate(new TimerTask() {
+        if (countdown == null) {
+            countdown = new Countdown(new Runnable() {
 
-            @Override
-            public void run() {
-                runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    runOnUiThread(new Runnable() {
 
-                    @Override
-                    public void run() {
+                        @Override
+                        public void run() {
 
-                        //Initialize timer from xml parameters
-                        timerText = (TextView) findViewById
-                                (R.id.timerText);
+                            //Initialize timer from xml parameters
+                            timerText = (TextView) findViewById
+                                    (R.id.timerText);
 
 
-                            timerText.setText("Time Remaining: " + time);
+                                timerText.setText("Time Remaining: " + time);
 
-                        // When the player runs out of time, stop the game.
-                        if (time == 0) {
-                            stopGame();
+                            // When the player runs out of time, stop the game.
+                            if (time == 0) {
+                                stopGame();
+                            }
+
+                           time -= 1;
                         }
+                    });
+                }
+            });
+        }
+        countdown.start();
+    }
 
-                       time -= 1;
-                    }
-                });
-            }
-        }, 0, 1000);
+    /**
+     * The app is going to the background, freeze the game and the countdown where they are
+     **/
+    @Override
+    protected void onPause() {
+        super.onPause();
+        //Keep whatever was left of the current second
+        if (board.getGameProgress() && !board.isSuspended()) {
+            board.suspend();
+            countdown.pause();
+        }
+    }
+
+    /**
+     * The app is back in the foreground, continue a frozen game with its remaining time
+     **/
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (board.isSuspended()) {
+            board.resume();
+            countdown.resume();
+        }
+    }
+
+    /**
+     * The activity is going away, possibly while the game is suspended in the background
+     * End the game so no mole threads are left parked and stop the countdown's timer thread
+     **/
+    @Override
+    protected void onDestroy() {
+        board.endGame();
+        if (countdown != null) {
+            countdown.shutdown();
+        }
+        super.onDestroy();
     }
 
     /**
@@ -264,17 +331,18 @@ public class MainActivity extends AppCompatActivity {
         switch (item.getItemId()) {
             case R.id.applySettings:
                 resetGame();
+                round++;
                 startGame();
                 return true;
             case R.id.reset:
                 resetGame();
+                LatencyTracer.reset();
                 beginTimer();
-                board.startGame(uiHandler);
+                board.startGame(uiHandler, newSchedule());
                 return true;
             case R.id.exit:
                 board.endGame();
-                t.cancel();
-                t.purge();
+                countdown.shutdown();
                 finish();
                 return true;
             default:
@@ -290,8 +358,9 @@ public class MainActivity extends AppCompatActivity {
         scoreText.setText("Score: " + score);
         time = INITIAL_TIMER;
         board.endGame();
-        t.cancel();
-        t.purge();
+        countdown.stop();
+        //Moles that were up when the game ended go back down
+        adapter.updateView();
     }
 
     /**
@@ -301,19 +370,66 @@ public class MainActivity extends AppCompatActivity {
         board = new MoleBoard(boardSize, moleLimit);
         board.newGame();
         grid.setColumnWidth(width / boardSize);
-        adapter = new MoleAdapter(this, board);
-        grid.setAdapter(adapter);
-        board.startGame(uiHandler);
+        //Reuse the adapter across games, it only needs to be pointed at the new board
+        if (adapter == null) {
+            adapter = new MoleAdapter(this, board);
+            grid.setAdapter(adapter);
+        } else {
+            adapter.setBoard(board);
+        }
+        LatencyTracer.reset();
+        board.startGame(uiHandler, newSchedule());
         beginTimer();
     }
 
+    /**
+     * Helper method to obtain the pop up schedule for the current round on the current board
+     * Resetting replays the same round from the schedule cache, applying settings moves on to
+     * the next round, so players with the same settings on the same round face the same moles
+     *
+     * @return the schedule for the round
+     */
+    private SpawnSchedule newSchedule() {
+        return SpawnSchedule.forRound(board.getColumns(), board.getMaxMoles(),
+                INITIAL_TIMER * 1000, round);
+    }
+
     /**
      * Helper method to stop the game
      */
     private void stopGame() {
         board.endGame();
-        t.cancel();
-        t.purge();
+        countdown.stop();
+        adapter.updateView();
+        writeTrace();
+    }
+
+    /**
+     * Helper method to save the latency spans of the round that just ended
+     * The events are copied here and written on a background thread to keep disk work off the
+     * UI thread, the file can be pulled off the device and opened in a Chrome trace event viewer
+     */
+    private void writeTrace() {
+        if (!LatencyTracer.isEnabled()) {
+            return;
+        }
+        final LatencyTracer.Snapshot snapshot = LatencyTracer.snapshot();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                File traceFile = new File(getFilesDir(), TRACE_FILE);
+                try {
+                    Writer out = new BufferedWriter(new FileWriter(traceFile));
+                    try {
+                        snapshot.writeTo(out);
+                    } finally {
+                        out.close();
+                    }
+                } catch (IOException e) {
+                    Log.w("Whack-A-Mole", "Unable to write " + traceFile, e);
+                }
+            }
+        }, "trace-writer").start();
     }
 
 }
@@ -2,9 +2,6 @@ package com.wilson.scott.whack_a_mole;
 
 import android.os.Handler;
 import android.os.Message;
-import java.util.concurrent.Semaphore;
-
-import static java.lang.Thread.sleep;
 
 
 /**
@@ -17,90 +14,99 @@ import static java.lang.Thread.sleep;
 
 public class Mole implements Runnable {
 
-    private Semaphore moleSem;
     private boolean active = false;
     private Handler uiHandler;
+    private EngineClock clock;
     private long hitAt;
     private long becameActiveAt;
-    private final long MIN_SLEEP = 1000;
     private final int WAS_HIT = 7;
     private final int MOLEHOLE_ACTIVE = 101;
     private final int MOLEHOLE_INACTIVE = 102;
-    private int maxSleep;
     private int activeFor;
     private boolean alreadyBeenHit = false;
+    private SpawnSchedule schedule;
+    private int hole;
+    private long startedAt;
 
     // Volatile variable that determines if the thread is ready to be shut down gracefully
     private volatile boolean running = true;
 
     /**
      * Default constructor of a mole object
+     * The mole follows a precompiled schedule, which already respects the maximum number of moles
      *
-     * @param moleSem   The semaphore that allows for a maximum number of moles
      * @param uiHandler The UI handler, which allows for this class to communicate to the UI thread
-     * @param numMoles  The total number of moles in the current game
+     * @param schedule  The precompiled schedule for the round
+     * @param hole      The hole on the board that this mole belongs to
+     * @param startedAt The engine time in which the round started
+     * @param clock     The clock of the board, which all sleeping is done on
      */
-    public Mole(Semaphore moleSem, Handler uiHandler, int numMoles) {
-        this.moleSem = moleSem;
+    public Mole(Handler uiHandler, SpawnSchedule schedule, int hole, long startedAt,
+                EngineClock clock) {
         this.uiHandler = uiHandler;
-
-        // Total number of moles in the game * 0.8 seconds as the maximum sleep timer
-        maxSleep = numMoles * 800;
+        this.clock = clock;
+        this.schedule = schedule;
+        this.hole = hole;
+        this.startedAt = startedAt;
     }
 
     /**
      * The method that is ran when the thread is created for this mole
+     * Walks a cursor through the precompiled schedule, popping up at each entry for this hole
      */
     @Override
     public void run() {
+        int cursor = schedule.firstFor(hole);
 
-        while (running) {
-            /**
-             * Random sleep timer occurs before acquiring semaphore so the first x threads aren't
-             * always the first to get a turn to "pop up"
-             */
-            try {
-                //Sleep for time between MIN_SLEEP and maxSleep
-                sleep((int)(Math.random() * (maxSleep - MIN_SLEEP)) + MIN_SLEEP);
-            } catch (InterruptedException e) {
-                //Do nothing if interrupted here
+        while (running && cursor < schedule.size()) {
+            //Absolute engine times this entry pops up and goes back down
+            long popAt = startedAt + schedule.timeAt(cursor);
+            long downAt = popAt + schedule.durationAt(cursor);
+
+            //Sleep until the next scheduled pop up for this hole
+            long wait = popAt - clock.now();
+            if (wait > 0) {
+                try {
+                    clock.sleep(wait);
+                } catch (InterruptedException e) {
+                    //Go back and recompute the remaining time if interrupted here
+                    continue;
+                }
+            }
+            if (!running) {
+                break;
             }
             //Check to see if the mole was hit during its last active time
             checkHit();
 
-            //Attempt to acquire the semaphore, if all slots are full, skip the loop and sleep
-            if (moleSem.tryAcquire()) {
-                //Let the UI thread know that you are popping up
-                Message isActive = new Message();
-                isActive.what = MOLEHOLE_ACTIVE;
-                uiHandler.sendMessage(isActive);
+            //A mole that woke up late only stays up until its scheduled end, so it can never
+            //overlap a later pop up and the schedule's maximum number of moles still holds
+            if (clock.now() < downAt) {
+                post(MOLEHOLE_ACTIVE);
                 active = true;
                 alreadyBeenHit = false;
-                //Record keeping timestamp log to determine if successfully hit
-                becameActiveAt = System.currentTimeMillis();
+                becameActiveAt = clock.now();
+                activeFor = (int) Math.max(0, downAt - becameActiveAt);
                 try {
-                    //Stay active for between 1-3 seconds
-                    activeFor = (int)(Math.random() * 2000) + 1000;
-                    sleep(activeFor);
+                    clock.sleep(activeFor);
                 } catch (InterruptedException e) {
                     //If interrupted, check to see if a hit was successful
+                    LatencyTracer.begin(LatencyTracer.WAKE, hole);
                     checkHit();
+                    LatencyTracer.end(LatencyTracer.WAKE, hole);
                 }
-                //Notify UI thread that you are inactive again
-                Message inactive = new Message();
-                inactive.what = MOLEHOLE_INACTIVE;
-                uiHandler.sendMessage(inactive);
+                post(MOLEHOLE_INACTIVE);
                 active = false;
-                //Release semaphore
-                moleSem.release();
             }
+
+            cursor = schedule.nextAfter(cursor);
         }
     }
 
     /**
      * Used to set the time in which the user hit the hole based off a timestamp
      *
-     * @param hitAt The number of milliseconds since epoch in which the attempt to hit was made
+     * @param hitAt The engine time in which the attempt to hit was made
      */
     public void setHitTime(long hitAt) {
        this.hitAt = hitAt;
@@ -114,12 +120,23 @@ public class Mole implements Runnable {
     private void checkHit() {
         if (hitAt > becameActiveAt && hitAt < (becameActiveAt + activeFor) && !alreadyBeenHit) {
             alreadyBeenHit = true;
-            Message m = new Message();
-            m.what = WAS_HIT;
-            uiHandler.sendMessage(m);
+            post(WAS_HIT);
         }
     }
 
+    /**
+     * Send a message to the UI thread, tagged with the hole it came from
+     *
+     * @param what the message code
+     */
+    private void post(int what) {
+        Message m = new Message();
+        m.what = what;
+        m.arg1 = hole;
+        LatencyTracer.instant(LatencyTracer.POST, hole);
+        clock.send(uiHandler, m);
+    }
+
     /**
      * Used to mark this mole and thread for termination
      */
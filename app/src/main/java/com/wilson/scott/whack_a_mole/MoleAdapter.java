@@ -33,11 +33,24 @@ public class MoleAdapter extends BaseAdapter {
         this.context = context;
     }
 
+    /**
+     * Point the adapter at a new game board, such as after the settings are applied
+     *
+     * @param board the new game board
+     **/
+    public void setBoard(MoleBoard board) {
+        this.board = board;
+        moles = board.getMoles();
+        notifyDataSetChanged();
+    }
+
     /**
      * Used to update the grid upon any changes (such as a mole popping up or down)
      **/
     public void updateView() {
+        LatencyTracer.begin(LatencyTracer.REBIND, -1);
         notifyDataSetChanged();
+        LatencyTracer.end(LatencyTracer.REBIND, -1);
     }
 
     /**
@@ -49,6 +62,7 @@ public class MoleAdapter extends BaseAdapter {
      * @return the created view
      **/
     public View getView(int pos, View convertView, ViewGroup parent) {
+        LatencyTracer.begin(LatencyTracer.GET_VIEW, pos);
 
         //Inflates context
         LayoutInflater inflater = (LayoutInflater) context
@@ -65,6 +79,7 @@ public class MoleAdapter extends BaseAdapter {
         else
             iv.setImageResource(R.drawable.molehole);
 
+        LatencyTracer.end(LatencyTracer.GET_VIEW, pos);
         return convertView;
 
     }
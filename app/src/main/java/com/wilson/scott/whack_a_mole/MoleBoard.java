@@ -2,8 +2,6 @@ package com.wilson.scott.whack_a_mole;
 
 import android.os.Handler;
 
-import java.util.concurrent.Semaphore;
-
 /**
  * A representation of the board used in the Whack-A-Mole game
  *
@@ -17,8 +15,9 @@ public class MoleBoard {
     private boolean gameInProgress;
     private Mole[] moles;
     private Thread[] threads;
-    private Semaphore moleSem;
     private int maxMoles;
+    private EngineClock clock;
+    private final long JOIN_TIMEOUT = 100;
 
     /**
      * Constructor for MoleBoard class
@@ -48,26 +47,52 @@ public class MoleBoard {
     public void newGame() {
 
             moles = new Mole[gameSize];
-            moleSem = new Semaphore(maxMoles, true);
     }
 
     /**
      * After the game has been created, it can be started through this method
      *
      * @param uiHandler The handler in which messages will be passed back to for UI updating
+     * @param schedule  The precompiled schedule for the round, made for this board size
+     * @throws IllegalArgumentException if the schedule was made for a different number of holes
      */
-    public void startGame(Handler uiHandler) {
+    public void startGame(Handler uiHandler, SpawnSchedule schedule) {
+        if (schedule.getHoles() != gameSize) {
+            throw new IllegalArgumentException("Schedule is for " + schedule.getHoles()
+                    + " holes, the board has " + gameSize);
+        }
         threads = new Thread[gameSize];
+        //Each round gets its own clock, the last round's was stopped when it ended
+        clock = new EngineClock();
+        long startedAt = clock.now();
 
-        //Initialize moles and assign them to threads
+        //Initialize moles with their hole in the schedule and assign them to threads
         for (int i = 0; i < gameSize; i++) {
-            moles[i] = new Mole(moleSem, uiHandler, gameSize);
+            moles[i] = new Mole(uiHandler, schedule, i, startedAt, clock);
             threads[i] = new Thread(moles[i]);
             threads[i].start();
         }
         gameInProgress = true;
     }
 
+    /**
+     * Getter for the number of columns on the board
+     *
+     * @return the number of columns
+     **/
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Getter for the maximum number of moles that can be up at a given time
+     *
+     * @return the maximum number of moles
+     **/
+    public int getMaxMoles() {
+        return maxMoles;
+    }
+
     /**
      * Getter for is the game in progress variable
      *
@@ -79,7 +104,47 @@ public class MoleBoard {
     }
 
     /**
-     * Game is over, set all threads for clean termination
+     * Freeze the game while it is in the background
+     * Every mole is parked with its remaining time intact and no timers or messages fire
+     **/
+    public void suspend() {
+        if (clock != null) {
+            clock.suspend();
+        }
+    }
+
+    /**
+     * Continue a suspended game from where it was frozen
+     **/
+    public void resume() {
+        if (clock != null) {
+            clock.resume();
+        }
+    }
+
+    /**
+     * Is a game in progress but frozen in the background
+     *
+     * @return true if the current round is suspended, false otherwise
+     **/
+    public boolean isSuspended() {
+        return gameInProgress && clock.isSuspended();
+    }
+
+    /**
+     * Getter for the clock that the moles of this board sleep on
+     *
+     * @return the clock of the current round, or null if no round has been started
+     **/
+    public EngineClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Game is over, stop all threads and wait for them to finish
+     * Threads are interrupted out of their sleep so they exit right away instead of lingering
+     * until their timers run out, and the wait for all of them shares a single short deadline
+     * since this is called from the UI thread
      **/
     public void endGame() {
         gameInProgress = false;
@@ -87,24 +152,54 @@ public class MoleBoard {
             for (int i = 0; i < threads.length; i++) {
                 moles[i].terminate();
             }
+            //Release moles parked on a suspended clock, then knock the rest out of their sleep
+            clock.stop();
+            for (int i = 0; i < threads.length; i++) {
+                threads[i].interrupt();
+            }
+            long deadline = EngineClock.uptimeMillis() + JOIN_TIMEOUT;
+            for (int i = 0; i < threads.length; i++) {
+                long remaining = deadline - EngineClock.uptimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                try {
+                    threads[i].join(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            threads = null;
         }
     }
 
+    /**
+     * Getter for the threads of the current round, used by tests
+     *
+     * @return the threads, or null if no round is running
+     **/
+    Thread[] getThreads() {
+        return threads;
+    }
+
     /**
      * The user has clicked on a grid position, pass this information to the mole to check if
      * the hit is successful
      *
      * @param number the grid position in which the user tapped
-     * @param timeStamp the timestamp in milliseconds since epoch that the grid was tapped
+     * @param timeStamp the time the grid was tapped, from EngineClock.uptimeMillis()
      */
     public void hit(int number, long timeStamp) {
+        LatencyTracer.begin(LatencyTracer.HIT, number);
         if (gameInProgress) {
             //Set the timestamp on the mole
-            moles[number].setHitTime(timeStamp);
+            moles[number].setHitTime(clock.toEngineTime(timeStamp));
             //If the mole is currently active, interrupt it to check the hit
             if (moles[number].isActive()) {
                 threads[number].interrupt();
             }
         }
+        LatencyTracer.end(LatencyTracer.HIT, number);
     }
 }
\ No newline at end of file
@@ -0,0 +1,254 @@
+package com.wilson.scott.whack_a_mole;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A precompiled plan of every mole pop up for a single round
+ * Entries are stored in one flat int array as (time, hole, duration) triples sorted by time,
+ * so the same seed always produces the same challenge and a compiled plan can be reused
+ *
+ * @author Scott Wilson
+ */
+
+public class SpawnSchedule {
+
+    // Offsets into a single (time, hole, duration) entry
+    public static final int TIME = 0;
+    public static final int HOLE = 1;
+    public static final int DURATION = 2;
+    public static final int STRIDE = 3;
+
+    // Smallest board whose maximum sleep (holes * 0.8 seconds) is longer than MIN_SLEEP
+    public static final int MIN_SIZE = 2;
+
+    // Moles sleep for 1 to holes * 0.8 seconds and stay up for 1 to 3 seconds
+    private static final int MIN_SLEEP = 1000;
+    private static final int MIN_ACTIVE = 1000;
+    private static final int ACTIVE_RANGE = 2000;
+
+    // Most recently used schedules, keyed by the parameters that produced them
+    private static final int CACHE_SIZE = 8;
+    private static final LinkedHashMap<String, SpawnSchedule> cache =
+            new LinkedHashMap<String, SpawnSchedule>(CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SpawnSchedule> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    private final int[] entries;
+    private final int count;
+    private final int holes;
+
+    // Index of each hole's first entry, and of the next entry for the same hole after each
+    // entry, so a mole's cursor never scans other holes' entries (count when there are none)
+    private final int[] first;
+    private final int[] next;
+
+    /**
+     * Constructor for SpawnSchedule class, schedules are compiled through compile(), tests may
+     * also build one by hand
+     * Links every entry to the next entry for the same hole
+     *
+     * @param entries the packed (time, hole, duration) entries
+     * @param count   the number of entries that are in use
+     * @param holes   the number of holes on the board this schedule was made for
+     */
+    SpawnSchedule(int[] entries, int count, int holes) {
+        this.entries = entries;
+        this.count = count;
+        this.holes = holes;
+
+        first = new int[holes];
+        next = new int[count];
+        int[] last = new int[holes];
+        for (int i = 0; i < holes; i++) {
+            first[i] = count;
+            last[i] = -1;
+        }
+        for (int i = 0; i < count; i++) {
+            int hole = entries[i * STRIDE + HOLE];
+            next[i] = count;
+            if (last[hole] < 0) {
+                first[hole] = i;
+            } else {
+                next[last[hole]] = i;
+            }
+            last[hole] = i;
+        }
+    }
+
+    /**
+     * Obtain the schedule for the given parameters, compiling it only if it has not been before
+     *
+     * @param size        the size of the board (size by size)
+     * @param maxMoles    the maximum number of moles that can be up at a given time
+     * @param roundLength the length of the round in milliseconds
+     * @param seed        the seed for the random number generator
+     * @return the schedule for the round
+     */
+    public static SpawnSchedule forRound(int size, int maxMoles, int roundLength, long seed) {
+        String key = size + ":" + maxMoles + ":" + roundLength + ":" + seed;
+        synchronized (cache) {
+            SpawnSchedule schedule = cache.get(key);
+            if (schedule == null) {
+                schedule = compile(size, maxMoles, roundLength, seed);
+                cache.put(key, schedule);
+            }
+            return schedule;
+        }
+    }
+
+    /**
+     * Generate a full round of pop ups ahead of time
+     * Each hole sleeps, wakes up and pops up only if fewer than maxMoles are already up, so the
+     * plan never exceeds the concurrency limit
+     *
+     * @param size        the size of the board (size by size), at least MIN_SIZE
+     * @param maxMoles    the maximum number of moles that can be up at a given time, at least 1
+     * @param roundLength the length of the round in milliseconds
+     * @param seed        the seed for the random number generator
+     * @return the compiled schedule
+     * @throws IllegalArgumentException if the board is too small, maxMoles is below one or
+     *                                  roundLength is negative
+     */
+    public static SpawnSchedule compile(int size, int maxMoles, int roundLength, long seed) {
+        if (size < MIN_SIZE) {
+            throw new IllegalArgumentException("Board size must be at least " + MIN_SIZE
+                    + ", was " + size);
+        }
+        if (maxMoles < 1) {
+            throw new IllegalArgumentException("maxMoles must be at least 1, was " + maxMoles);
+        }
+        if (roundLength < 0) {
+            throw new IllegalArgumentException("roundLength must not be negative, was "
+                    + roundLength);
+        }
+        int holes = size * size;
+        int maxSleep = holes * 800;
+        Random random = new Random(seed);
+
+        // The next time each hole wakes up and the time its current pop up ends
+        int[] wakeAt = new int[holes];
+        int[] upUntil = new int[holes];
+        for (int i = 0; i < holes; i++) {
+            wakeAt[i] = random.nextInt(maxSleep - MIN_SLEEP) + MIN_SLEEP;
+        }
+
+        int[] entries = new int[STRIDE * 16];
+        int count = 0;
+
+        while (true) {
+            //Find the hole that wakes up next, ties go to the lowest hole
+            int hole = 0;
+            for (int i = 1; i < holes; i++) {
+                if (wakeAt[i] < wakeAt[hole]) {
+                    hole = i;
+                }
+            }
+            int now = wakeAt[hole];
+            if (now >= roundLength) {
+                break;
+            }
+
+            //Count how many moles are still up at this moment
+            int up = 0;
+            for (int i = 0; i < holes; i++) {
+                if (upUntil[i] > now) {
+                    up++;
+                }
+            }
+
+            int sleepFor = random.nextInt(maxSleep - MIN_SLEEP) + MIN_SLEEP;
+            if (up < maxMoles) {
+                int duration = random.nextInt(ACTIVE_RANGE) + MIN_ACTIVE;
+                if (count * STRIDE == entries.length) {
+                    int[] grown = new int[entries.length * 2];
+                    System.arraycopy(entries, 0, grown, 0, entries.length);
+                    entries = grown;
+                }
+                int at = count * STRIDE;
+                entries[at + TIME] = now;
+                entries[at + HOLE] = hole;
+                entries[at + DURATION] = duration;
+                count++;
+                upUntil[hole] = now + duration;
+                wakeAt[hole] = now + duration + sleepFor;
+            } else {
+                wakeAt[hole] = now + sleepFor;
+            }
+        }
+
+        return new SpawnSchedule(entries, count, holes);
+    }
+
+    /**
+     * The number of pop ups in this schedule
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * The number of holes on the board this schedule was compiled for
+     *
+     * @return the number of holes
+     */
+    public int getHoles() {
+        return holes;
+    }
+
+    /**
+     * Milliseconds after the start of the round that an entry pops up
+     *
+     * @param index the index of the entry
+     * @return the pop up time of the entry
+     */
+    public int timeAt(int index) {
+        return entries[index * STRIDE + TIME];
+    }
+
+    /**
+     * The hole that an entry pops up in
+     *
+     * @param index the index of the entry
+     * @return the hole of the entry
+     */
+    public int holeAt(int index) {
+        return entries[index * STRIDE + HOLE];
+    }
+
+    /**
+     * How many milliseconds an entry stays up for
+     *
+     * @param index the index of the entry
+     * @return the duration of the entry
+     */
+    public int durationAt(int index) {
+        return entries[index * STRIDE + DURATION];
+    }
+
+    /**
+     * The first entry that belongs to the given hole
+     *
+     * @param hole the hole that is looking for its first pop up
+     * @return the index of the first entry for the hole, or size() if there are none
+     */
+    public int firstFor(int hole) {
+        return first[hole];
+    }
+
+    /**
+     * Advance a cursor to the next entry that belongs to the same hole as the given entry
+     *
+     * @param index the index of the current entry
+     * @return the index of the next entry for the hole, or size() if there are none left
+     */
+    public int nextAfter(int index) {
+        return next[index];
+    }
+}
@@ -0,0 +1,343 @@
+package com.wilson.scott.whack_a_mole;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that exported traces are valid Chrome trace event JSON with begin and end events paired
+ *
+ * @author Scott Wilson
+ */
+public class LatencyTracerTest {
+
+    @Before
+    public void setUp() {
+        LatencyTracer.setEnabled(true);
+        LatencyTracer.reset();
+    }
+
+    @After
+    public void tearDown() {
+        LatencyTracer.setEnabled(false);
+        LatencyTracer.reset();
+    }
+
+    @Test
+    public void writeTo_isValidJsonWithPairedSpans() throws Exception {
+        LatencyTracer.begin(LatencyTracer.TAP, 4);
+        LatencyTracer.begin(LatencyTracer.HIT, 4);
+        LatencyTracer.end(LatencyTracer.HIT, 4);
+        LatencyTracer.end(LatencyTracer.TAP, 4);
+
+        Thread mole = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                LatencyTracer.begin(LatencyTracer.WAKE, 4);
+                LatencyTracer.instant(LatencyTracer.POST, 4);
+                LatencyTracer.end(LatencyTracer.WAKE, 4);
+            }
+        });
+        mole.start();
+        mole.join();
+
+        List<Map<String, Object>> events = export();
+        assertEquals(7, countSpanEvents(events));
+        assertPaired(events);
+    }
+
+    @Test
+    public void reset_clearsEvents() throws Exception {
+        LatencyTracer.begin(LatencyTracer.TAP, 1);
+        LatencyTracer.end(LatencyTracer.TAP, 1);
+        LatencyTracer.reset();
+
+        assertEquals(0, countSpanEvents(export()));
+    }
+
+    @Test
+    public void fullBuffer_keepsNewestEventsPaired() throws Exception {
+        //End on an instant so an odd number of events were written and the oldest one left in
+        //the ring is an end whose begin was overwritten
+        for (int i = 0; i < LatencyTracer.CAPACITY; i++) {
+            LatencyTracer.begin(LatencyTracer.GET_VIEW, i);
+            LatencyTracer.end(LatencyTracer.GET_VIEW, i);
+        }
+        LatencyTracer.instant(LatencyTracer.FRAME, -1);
+
+        List<Map<String, Object>> events = export();
+        assertPaired(events);
+
+        //The newest events survived, and the overwritten count sits at the end of the timeline
+        Map<String, Object> last = events.get(events.size() - 1);
+        assertEquals("overwritten", last.get("name"));
+        Map<String, Object> newest = events.get(events.size() - 2);
+        assertEquals("onPreDraw", newest.get("name"));
+        assertEquals(newest.get("ts"), last.get("ts"));
+        Map<String, Object> lastView = events.get(events.size() - 3);
+        assertEquals("getView", lastView.get("name"));
+        assertEquals(LatencyTracer.CAPACITY - 1.0, args(lastView).get("position"));
+    }
+
+    @Test
+    public void reservedBuffer_holdsAWholeRound() throws Exception {
+        //Reserve on a thread of its own so the test thread keeps the default capacity
+        Thread ui = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                LatencyTracer.reserve(LatencyTracer.UI_CAPACITY);
+                for (int i = 0; i < LatencyTracer.UI_CAPACITY / 2; i++) {
+                    LatencyTracer.begin(LatencyTracer.GET_VIEW, i);
+                    LatencyTracer.end(LatencyTracer.GET_VIEW, i);
+                }
+            }
+        });
+        ui.start();
+        ui.join();
+
+        List<Map<String, Object>> events = export();
+        assertEquals(LatencyTracer.UI_CAPACITY, countSpanEvents(events));
+        Map<String, Object> oldest = null;
+        for (Map<String, Object> event : events) {
+            assertFalse("Nothing should be overwritten", "overwritten".equals(event.get("name")));
+            if (oldest == null && "getView".equals(event.get("name"))) {
+                oldest = event;
+            }
+        }
+        assertEquals(0.0, args(oldest).get("position"));
+    }
+
+    @Test
+    public void disabled_recordsNothing() throws Exception {
+        LatencyTracer.setEnabled(false);
+        LatencyTracer.begin(LatencyTracer.TAP, 1);
+        LatencyTracer.end(LatencyTracer.TAP, 1);
+
+        assertEquals(0, countSpanEvents(export()));
+    }
+
+    /**
+     * Export the trace and parse it back
+     *
+     * @return the trace events
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> export() throws Exception {
+        StringWriter out = new StringWriter();
+        LatencyTracer.writeTo(out);
+        Map<String, Object> trace = (Map<String, Object>) new JsonReader(out.toString()).read();
+        List<Map<String, Object>> events = new ArrayList<>();
+        for (Object event : (List<Object>) trace.get("traceEvents")) {
+            events.add((Map<String, Object>) event);
+        }
+        return events;
+    }
+
+    /**
+     * Count the events that are not thread metadata
+     *
+     * @param events the trace events
+     * @return the number of begin, end and instant events
+     */
+    private static int countSpanEvents(List<Map<String, Object>> events) {
+        int count = 0;
+        for (Map<String, Object> event : events) {
+            Object phase = event.get("ph");
+            if ("B".equals(phase) || "E".equals(phase) || "i".equals(phase)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Check that on every thread each end event closes the most recent open begin event
+     *
+     * @param events the trace events
+     */
+    private static void assertPaired(List<Map<String, Object>> events) {
+        Map<Object, List<Object>> open = new HashMap<>();
+        for (Map<String, Object> event : events) {
+            List<Object> stack = open.get(event.get("tid"));
+            if (stack == null) {
+                stack = new ArrayList<>();
+                open.put(event.get("tid"), stack);
+            }
+            if ("B".equals(event.get("ph"))) {
+                stack.add(event.get("name"));
+            } else if ("E".equals(event.get("ph"))) {
+                assertFalse("End without a begin: " + event, stack.isEmpty());
+                assertEquals(stack.remove(stack.size() - 1), event.get("name"));
+            }
+        }
+        for (List<Object> stack : open.values()) {
+            assertTrue("Begin without an end: " + stack, stack.isEmpty());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> args(Map<String, Object> event) {
+        return (Map<String, Object>) event.get("args");
+    }
+
+    /**
+     * A minimal strict JSON parser, enough to prove the export is well formed
+     */
+    private static class JsonReader {
+        private final String s;
+        private int pos;
+
+        JsonReader(String s) {
+            this.s = s;
+        }
+
+        Object read() {
+            Object value = value();
+            skipSpace();
+            if (pos != s.length()) {
+                throw error("Trailing characters");
+            }
+            return value;
+        }
+
+        private Object value() {
+            skipSpace();
+            if (pos >= s.length()) {
+                throw error("Unexpected end");
+            }
+            char c = s.charAt(pos);
+            if (c == '{') {
+                return object();
+            } else if (c == '[') {
+                return array();
+            } else if (c == '"') {
+                return string();
+            } else if (s.startsWith("true", pos)) {
+                pos += 4;
+                return Boolean.TRUE;
+            } else if (s.startsWith("false", pos)) {
+                pos += 5;
+                return Boolean.FALSE;
+            } else if (s.startsWith("null", pos)) {
+                pos += 4;
+                return null;
+            }
+            return number();
+        }
+
+        private Map<String, Object> object() {
+            Map<String, Object> map = new HashMap<>();
+            expect('{');
+            skipSpace();
+            if (peek() == '}') {
+                pos++;
+                return map;
+            }
+            while (true) {
+                skipSpace();
+                String key = string();
+                skipSpace();
+                expect(':');
+                map.put(key, value());
+                skipSpace();
+                if (peek() == ',') {
+                    pos++;
+                } else {
+                    expect('}');
+                    return map;
+                }
+            }
+        }
+
+        private List<Object> array() {
+            List<Object> list = new ArrayList<>();
+            expect('[');
+            skipSpace();
+            if (peek() == ']') {
+                pos++;
+                return list;
+            }
+            while (true) {
+                list.add(value());
+                skipSpace();
+                if (peek() == ',') {
+                    pos++;
+                } else {
+                    expect(']');
+                    return list;
+                }
+            }
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = s.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                } else if (c == '\\') {
+                    char e = s.charAt(pos++);
+                    if (e == 'u') {
+                        sb.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+                        pos += 4;
+                    } else if ("\"\\/".indexOf(e) >= 0) {
+                        sb.append(e);
+                    } else if ("bfnrt".indexOf(e) >= 0) {
+                        sb.append(' ');
+                    } else {
+                        throw error("Bad escape");
+                    }
+                } else if (c < ' ') {
+                    throw error("Control character in string");
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+
+        private Double number() {
+            int start = pos;
+            while (pos < s.length() && "+-0123456789.eE".indexOf(s.charAt(pos)) >= 0) {
+                pos++;
+            }
+            String text = s.substring(start, pos);
+            if (!text.matches("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?")) {
+                throw error("Bad number '" + text + "'");
+            }
+            return Double.valueOf(text);
+        }
+
+        private char peek() {
+            if (pos >= s.length()) {
+                throw error("Unexpected end");
+            }
+            return s.charAt(pos);
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw error("Expected '" + c + "'");
+            }
+            pos++;
+        }
+
+        private void skipSpace() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalStateException error(String message) {
+            return new IllegalStateException(message + " at " + pos);
+        }
+    }
+}
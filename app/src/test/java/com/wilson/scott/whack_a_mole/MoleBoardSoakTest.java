@@ -0,0 +1,307 @@
+package com.wilson.scott.whack_a_mole;
+
+import android.os.Handler;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Soak test that runs the game engine headless through many start, hit, reset and apply
+ * settings cycles back to back, along with the countdown and adapter the activity drives,
+ * failing if threads, heap or allocation grow without bound.
+ * Run a longer soak with ./gradlew test -Dsoak.cycles=50000
+ *
+ * @author Scott Wilson
+ */
+public class MoleBoardSoakTest {
+
+    private static final int CYCLES = Integer.getInteger("soak.cycles", 2000);
+    private static final int CHECKPOINTS = 10;
+    private static final int GAMES_PER_CYCLE = 2;
+    private static final int HITS_PER_GAME = 5;
+
+    // Moles in the soak's schedule pop up as soon as the round starts and stay up this long
+    private static final int POP_UP_FOR = 1000;
+    private static final long POP_UP_TIMEOUT = 100;
+
+    // How far each measurement may drift from its baseline before it counts as a leak
+    private static final int THREAD_SLACK = 2;
+    private static final long ALLOCATION_SLACK = 4 * 1024;
+
+    // Heap growth per cycle allowed by the trend across checkpoints, well below a single
+    // board's moles (a few kilobytes) but above garbage collection noise
+    private static final long HEAP_GROWTH_PER_CYCLE = 256;
+
+    private final Handler uiHandler = new Handler();
+    private final Random random = new Random(42);
+    private final Countdown countdown = new Countdown(new Runnable() {
+        @Override
+        public void run() {
+        }
+    });
+    private MoleAdapter adapter;
+    private boolean tracing;
+
+    // Moles hit while up and messages sent to the UI thread, to show the soak played for real
+    private long hits;
+    private long messages;
+
+    @After
+    public void tearDown() {
+        countdown.shutdown();
+        LatencyTracer.setEnabled(false);
+        LatencyTracer.reset();
+    }
+
+    @Test
+    public void repeatedGames_doNotLeak() throws Exception {
+        soak("tracing off", CYCLES);
+    }
+
+    @Test
+    public void repeatedGamesWithTracing_doNotLeak() throws Exception {
+        //Debug builds record spans, every mole thread then gets a tracer buffer
+        tracing = true;
+        LatencyTracer.setEnabled(true);
+        soak("tracing on", CYCLES / 2);
+    }
+
+    /**
+     * Run the soak and check that nothing grew
+     *
+     * @param name   the name of the configuration, for the report
+     * @param cycles the number of cycles to run
+     */
+    private void soak(String name, int cycles) throws Exception {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+        //Warm up so that class loading and JIT do not count as growth
+        for (int i = 0; i < cycles / CHECKPOINTS; i++) {
+            cycle();
+        }
+        int baselineThreads = threadBean.getThreadCount();
+        long baselineHeap = heapAfterGc();
+
+        int cyclesPerCheckpoint = Math.max(1, cycles / CHECKPOINTS);
+        int[] liveThreads = new int[CHECKPOINTS];
+        long[] heap = new long[CHECKPOINTS];
+        long[] allocatedPerCycle = new long[CHECKPOINTS];
+
+        for (int c = 0; c < CHECKPOINTS; c++) {
+            long allocatedBefore = allocatedBytes();
+            for (int i = 0; i < cyclesPerCheckpoint; i++) {
+                cycle();
+            }
+            allocatedPerCycle[c] = (allocatedBytes() - allocatedBefore) / cyclesPerCheckpoint;
+            liveThreads[c] = threadBean.getThreadCount();
+            heap[c] = heapAfterGc();
+        }
+
+        long[] sorted = allocatedPerCycle.clone();
+        Arrays.sort(sorted);
+        long steadyState = sorted[CHECKPOINTS / 2] / GAMES_PER_CYCLE;
+        System.out.println("Soak (" + name + "): " + cycles + " cycles, steady state allocation "
+                + steadyState + " bytes/game");
+        System.out.println("Soak: live threads " + Arrays.toString(liveThreads)
+                + " (baseline " + baselineThreads + ")");
+        System.out.println("Soak: heap after GC " + Arrays.toString(heap)
+                + " (baseline " + baselineHeap + ")");
+
+        System.out.println("Soak: " + hits + " hits, " + messages + " messages");
+
+        assertTrue("No mole was ever hit", hits > 0);
+        assertTrue("No message was ever sent", messages > 0);
+        for (int c = 0; c < CHECKPOINTS; c++) {
+            assertTrue("Live threads grew to " + liveThreads[c] + " from " + baselineThreads,
+                    liveThreads[c] <= baselineThreads + THREAD_SLACK);
+        }
+
+        //A leak shows as a steady climb, not as a single high reading
+        long growth = heapGrowthPerCycle(heap, cyclesPerCheckpoint);
+        int rises = 0;
+        for (int c = 1; c < CHECKPOINTS; c++) {
+            if (heap[c] > heap[c - 1]) {
+                rises++;
+            }
+        }
+        System.out.println("Soak: heap grew " + growth + " bytes/cycle, rose at " + rises
+                + " of " + (CHECKPOINTS - 1) + " checkpoints");
+        assertTrue("Heap after GC grows " + growth + " bytes/cycle",
+                growth <= HEAP_GROWTH_PER_CYCLE);
+        assertTrue("Heap after GC rose at every checkpoint", rises < CHECKPOINTS - 1);
+        if (allocatedBytes() >= 0) {
+            assertTrue("Allocation per cycle grew to " + allocatedPerCycle[CHECKPOINTS - 1]
+                            + " from " + allocatedPerCycle[0],
+                    allocatedPerCycle[CHECKPOINTS - 1]
+                            <= allocatedPerCycle[0] * 3 / 2 + ALLOCATION_SLACK);
+        }
+    }
+
+    /**
+     * One cycle as the activity drives it: apply new settings and start a round, hit the moles
+     * that are up and tap a few other holes, go to the background and back, then reset and
+     * replay the same round
+     */
+    private void cycle() throws InterruptedException {
+        int size = 3 + random.nextInt(3);
+        int maxMoles = 1 + random.nextInt(10);
+        MoleBoard board = new MoleBoard(size, maxMoles);
+        board.newGame();
+        if (adapter == null) {
+            adapter = new MoleAdapter(null, board);
+        } else {
+            adapter.setBoard(board);
+        }
+
+        SpawnSchedule schedule = popUpAtStart(size, maxMoles);
+        play(board, schedule, size);
+        countdown.pause();
+        board.suspend();
+        board.resume();
+        countdown.resume();
+        endGame(board);
+
+        play(board, schedule, size);
+        endGame(board);
+    }
+
+    /**
+     * A schedule where up to maxMoles moles pop up the moment the round starts, so a game that
+     * only lasts a few milliseconds still pops up, hits and messages the UI thread
+     *
+     * @param size     the size of the board (size by size)
+     * @param maxMoles the maximum number of moles that can be up at a given time
+     * @return the schedule
+     */
+    private static SpawnSchedule popUpAtStart(int size, int maxMoles) {
+        int count = Math.min(maxMoles, size * size);
+        int[] entries = new int[count * SpawnSchedule.STRIDE];
+        for (int i = 0; i < count; i++) {
+            entries[i * SpawnSchedule.STRIDE + SpawnSchedule.TIME] = 0;
+            entries[i * SpawnSchedule.STRIDE + SpawnSchedule.HOLE] = i;
+            entries[i * SpawnSchedule.STRIDE + SpawnSchedule.DURATION] = POP_UP_FOR;
+        }
+        return new SpawnSchedule(entries, count, size * size);
+    }
+
+    /**
+     * End a round and its countdown, keeping count of the messages it sent
+     *
+     * @param board the board to end the round on
+     */
+    private void endGame(MoleBoard board) {
+        board.endGame();
+        countdown.stop();
+        messages += board.getClock().getMessagesSent();
+    }
+
+    /**
+     * Start a round and its countdown, then hit the moles once they are up
+     *
+     * @param board    the board to play on
+     * @param schedule the schedule for the round
+     * @param size     the size of the board (size by size)
+     */
+    private void play(MoleBoard board, SpawnSchedule schedule, int size)
+            throws InterruptedException {
+        if (tracing) {
+            LatencyTracer.reset();
+        }
+        board.startGame(uiHandler, schedule);
+        countdown.start();
+        hitSome(board, size);
+    }
+
+    /**
+     * Wait for the moles to pop up, hit every one that is up, then tap a few random holes
+     * The hit moles are waited on until they go back down, so their hit messages are sent
+     *
+     * @param board the board to tap
+     * @param size  the size of the board (size by size)
+     */
+    private void hitSome(MoleBoard board, int size) throws InterruptedException {
+        Mole[] moles = board.getMoles();
+        long deadline = EngineClock.uptimeMillis() + POP_UP_TIMEOUT;
+        while (!moles[0].isActive() && EngineClock.uptimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        //A hit only counts after the mole came up, so give it a millisecond
+        Thread.sleep(2);
+
+        boolean[] hit = new boolean[moles.length];
+        for (int i = 0; i < moles.length; i++) {
+            if (moles[i].isActive()) {
+                board.hit(i, EngineClock.uptimeMillis());
+                hit[i] = true;
+                hits++;
+            }
+        }
+        for (int i = 0; i < HITS_PER_GAME; i++) {
+            board.hit(random.nextInt(size * size), EngineClock.uptimeMillis());
+        }
+
+        for (int i = 0; i < moles.length; i++) {
+            while (hit[i] && moles[i].isActive() && EngineClock.uptimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    /**
+     * Least squares slope of the heap after GC across the checkpoints
+     *
+     * @param heap                the heap after GC at each checkpoint
+     * @param cyclesPerCheckpoint the number of cycles between checkpoints
+     * @return the growth in bytes per cycle
+     */
+    private static long heapGrowthPerCycle(long[] heap, int cyclesPerCheckpoint) {
+        double meanX = (heap.length - 1) / 2.0;
+        double meanY = 0;
+        for (long h : heap) {
+            meanY += h;
+        }
+        meanY /= heap.length;
+        double covariance = 0;
+        double variance = 0;
+        for (int c = 0; c < heap.length; c++) {
+            covariance += (c - meanX) * (heap[c] - meanY);
+            variance += (c - meanX) * (c - meanX);
+        }
+        return (long) (covariance / variance / cyclesPerCheckpoint);
+    }
+
+    /**
+     * Used heap once garbage collection has settled
+     *
+     * @return the number of bytes in use
+     */
+    private static long heapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Bytes allocated so far by the thread driving the soak
+     *
+     * @return the number of bytes, or -1 if the JVM cannot measure it
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
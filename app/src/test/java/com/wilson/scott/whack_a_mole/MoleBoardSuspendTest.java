@@ -0,0 +1,118 @@
+package com.wilson.scott.whack_a_mole;
+
+import android.os.Handler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures that a suspended game does no work at all, and that it picks up where it left off
+ *
+ * @author Scott Wilson
+ */
+public class MoleBoardSuspendTest {
+
+    private final Handler uiHandler = new Handler();
+
+    @Test
+    public void suspendedGame_hasNoWakeupsOrMessages() throws Exception {
+        MoleBoard board = new MoleBoard(3, 3);
+        board.newGame();
+        board.startGame(uiHandler, SpawnSchedule.compile(3, 3, 30000, 1));
+        EngineClock clock = board.getClock();
+
+        //Suspend with a mole up, so both sleeping and active moles get parked
+        awaitActiveMole(board);
+        assertTrue("Engine never sent a message", clock.getMessagesSent() > 0);
+
+        //Give every mole a moment to park after being told to suspend
+        board.suspend();
+        assertTrue(board.isSuspended());
+        Thread.sleep(100);
+        long wakeups = clock.getWakeups();
+        long messages = clock.getMessagesSent();
+
+        //Longer than any time a mole stays up, which would have ended mid wait
+        Thread.sleep(3000);
+        System.out.println("Suspended: " + (clock.getWakeups() - wakeups) + " wakeups, "
+                + (clock.getMessagesSent() - messages) + " messages");
+        assertEquals("Wakeups while suspended", wakeups, clock.getWakeups());
+        assertEquals("Messages while suspended", messages, clock.getMessagesSent());
+
+        board.resume();
+        assertFalse(board.isSuspended());
+        long resumedAt = System.currentTimeMillis();
+        while (clock.getMessagesSent() == messages
+                && System.currentTimeMillis() - resumedAt < 10000) {
+            Thread.sleep(50);
+        }
+        assertTrue("Engine never resumed", clock.getMessagesSent() > messages);
+        board.endGame();
+    }
+
+    @Test
+    public void sleep_keepsRemainingTimeAcrossSuspend() throws Exception {
+        final EngineClock clock = new EngineClock();
+        final long[] wokeAfter = new long[1];
+        Thread sleeper = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                try {
+                    clock.sleep(300);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                wokeAfter[0] = System.currentTimeMillis() - start;
+            }
+        });
+        sleeper.start();
+
+        Thread.sleep(100);
+        clock.suspend();
+        Thread.sleep(500);
+        clock.resume();
+        sleeper.join(2000);
+
+        //300ms of engine time plus the 500ms spent suspended
+        assertTrue("Woke after " + wokeAfter[0] + "ms", wokeAfter[0] >= 750);
+    }
+
+    @Test
+    public void endGame_stopsSuspendedMoles() throws Exception {
+        MoleBoard board = new MoleBoard(3, 9);
+        board.newGame();
+        board.startGame(uiHandler, SpawnSchedule.compile(3, 9, 30000, 1));
+
+        //A mole that is up when the game ends has one last message to send
+        awaitActiveMole(board);
+        board.suspend();
+        Thread.sleep(100);
+
+        Thread[] threads = board.getThreads();
+        board.endGame();
+        for (Thread thread : threads) {
+            thread.join(1000);
+            assertFalse("Mole still running after endGame", thread.isAlive());
+        }
+    }
+
+    /**
+     * Wait until at least one mole on the board is up
+     *
+     * @param board the board to watch
+     */
+    private static void awaitActiveMole(MoleBoard board) throws InterruptedException {
+        long startedAt = System.currentTimeMillis();
+        while (System.currentTimeMillis() - startedAt < 10000) {
+            for (Mole mole : board.getMoles()) {
+                if (mole.isActive()) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+        fail("No mole ever popped up");
+    }
+}
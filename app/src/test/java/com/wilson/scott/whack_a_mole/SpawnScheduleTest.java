@@ -0,0 +1,112 @@
+package com.wilson.scott.whack_a_mole;
+
+import android.os.Handler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that compiled spawn schedules are sorted, repeatable and never exceed the maximum
+ * number of moles that can be up at a given time
+ *
+ * @author Scott Wilson
+ */
+public class SpawnScheduleTest {
+
+    private static final int ROUND_LENGTH = 30000;
+    private static final int SEEDS = 200;
+
+    @Test
+    public void compile_isSortedAndRespectsMaxMoles() throws Exception {
+        for (int size = SpawnSchedule.MIN_SIZE; size <= 5; size++) {
+            for (int maxMoles = 1; maxMoles <= 10; maxMoles++) {
+                for (long seed = 0; seed < SEEDS; seed++) {
+                    check(SpawnSchedule.compile(size, maxMoles, ROUND_LENGTH, seed),
+                            size, maxMoles);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void compile_isRepeatableForTheSameSeed() throws Exception {
+        SpawnSchedule a = SpawnSchedule.compile(4, 3, ROUND_LENGTH, 1234);
+        SpawnSchedule b = SpawnSchedule.compile(4, 3, ROUND_LENGTH, 1234);
+        assertEquals(a.size(), b.size());
+        for (int i = 0; i < a.size(); i++) {
+            assertEquals(a.timeAt(i), b.timeAt(i));
+            assertEquals(a.holeAt(i), b.holeAt(i));
+            assertEquals(a.durationAt(i), b.durationAt(i));
+        }
+    }
+
+    @Test
+    public void forRound_reusesCompiledSchedules() throws Exception {
+        assertSame(SpawnSchedule.forRound(3, 3, ROUND_LENGTH, 7),
+                SpawnSchedule.forRound(3, 3, ROUND_LENGTH, 7));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compile_rejectsBoardsBelowMinSize() throws Exception {
+        SpawnSchedule.compile(SpawnSchedule.MIN_SIZE - 1, 1, ROUND_LENGTH, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compile_rejectsNoMoles() throws Exception {
+        SpawnSchedule.compile(3, 0, ROUND_LENGTH, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void startGame_rejectsScheduleForAnotherBoardSize() throws Exception {
+        MoleBoard board = new MoleBoard(3, 3);
+        board.newGame();
+        board.startGame(new Handler(), SpawnSchedule.compile(4, 3, ROUND_LENGTH, 0));
+    }
+
+    /**
+     * Walk a schedule checking order, bounds and how many moles are up at every pop up
+     *
+     * @param schedule the schedule to check
+     * @param size     the size of the board (size by size)
+     * @param maxMoles the maximum number of moles that can be up at a given time
+     */
+    private static void check(SpawnSchedule schedule, int size, int maxMoles) {
+        int[] upUntil = new int[size * size];
+        int last = 0;
+        for (int i = 0; i < schedule.size(); i++) {
+            int time = schedule.timeAt(i);
+            int hole = schedule.holeAt(i);
+            assertTrue("Entries out of order at " + i, time >= last);
+            assertTrue("Pop up after the round ended", time < ROUND_LENGTH);
+            assertTrue("Hole out of range", hole >= 0 && hole < size * size);
+            assertTrue("Hole popped up while already up", upUntil[hole] <= time);
+            last = time;
+            upUntil[hole] = time + schedule.durationAt(i);
+
+            int up = 0;
+            for (int end : upUntil) {
+                if (end > time) {
+                    up++;
+                }
+            }
+            assertTrue(up + " moles up with a limit of " + maxMoles, up <= maxMoles);
+        }
+
+        //Following each hole's chain of entries visits every entry exactly once, in order
+        int visited = 0;
+        for (int hole = 0; hole < size * size; hole++) {
+            int previous = -1;
+            for (int i = schedule.firstFor(hole); i < schedule.size(); i = schedule.nextAfter(i)) {
+                assertEquals(hole, schedule.holeAt(i));
+                assertTrue("Chain out of order at " + i, i > previous);
+                for (int skipped = previous + 1; skipped < i; skipped++) {
+                    assertTrue("Chain skipped entry " + skipped, schedule.holeAt(skipped) != hole);
+                }
+                previous = i;
+                visited++;
+            }
+        }
+        assertEquals(schedule.size(), visited);
+    }
+}